@@ -34,6 +34,9 @@ public class SnakeYamlOps implements DynamicOps<Node> {
     private final Node EMPTY;
     private final MyConstructor constructor = new MyConstructor();
     private final DumperOptions dumperOptions;
+    //converted collections for the current convertTo pass, so aliased subtrees are converted once and stay shared
+    private DynamicOps<?> conversionOps;
+    private Map<Node, Object> conversionCache;
 
     public SnakeYamlOps(DumperOptions dumperOptions) {
         this.dumperOptions = dumperOptions;
@@ -54,6 +57,36 @@ public class SnakeYamlOps implements DynamicOps<Node> {
 
     @Override
     public <U> U convertTo(DynamicOps<U> outOps, Node input) {
+        if (conversionOps == outOps) {
+            return convertShared(outOps, input);
+        }
+        if (conversionOps != null) {
+            return convertNode(outOps, input);
+        }
+        conversionOps = outOps;
+        conversionCache = new IdentityHashMap<>();
+        try {
+            return convertShared(outOps, input);
+        } finally {
+            conversionOps = null;
+            conversionCache = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U> U convertShared(DynamicOps<U> outOps, Node input) {
+        if (!(input instanceof CollectionNode<?>)) {
+            return convertNode(outOps, input);
+        }
+        U converted = (U) conversionCache.get(input);
+        if (converted == null) {
+            converted = convertNode(outOps, input);
+            conversionCache.put(input, converted);
+        }
+        return converted;
+    }
+
+    private <U> U convertNode(DynamicOps<U> outOps, Node input) {
         if (input instanceof MappingNode) {
             return convertMap(outOps, input);
         }
@@ -1,9 +1,14 @@
 package com.thiakil.yamlops;
 
+import com.thiakil.yamlops.util.ChunkedStreamReader;
+import com.thiakil.yamlops.util.ExpandedSize;
+import com.thiakil.yamlops.util.LazyComposer;
+import com.thiakil.yamlops.util.SubtreeSharer;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.composer.Composer;
 import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.nodes.*;
 import org.yaml.snakeyaml.parser.ParserImpl;
 import org.yaml.snakeyaml.reader.StreamReader;
@@ -11,9 +16,10 @@ import org.yaml.snakeyaml.resolver.Resolver;
 import org.yaml.snakeyaml.serializer.Serializer;
 
 import java.io.*;
-import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class YamlHelper {
     public static void dump(Writer output, Node rootNode, DumperOptions dumperOptions) throws IOException {
@@ -39,8 +45,19 @@ public class YamlHelper {
     }
 
     public static Node load(Reader yaml) {
-        LoaderOptions loaderOptions = new LoaderOptions();
-        Composer composer = new Composer(new ParserImpl(new StreamReader(yaml), loaderOptions), new Resolver(), loaderOptions);
+        return load(yaml, new LoaderOptions());
+    }
+
+    public static Node load(Reader yaml, LoaderOptions loaderOptions) {
+        return load(new StreamReader(yaml), loaderOptions);
+    }
+
+    /**
+     * Loads a document from a custom reader, e.g. a {@link ChunkedStreamReader} together with
+     * {@link #largeDocumentOptions()} for inputs above SnakeYaml's default size limit.
+     */
+    public static Node load(StreamReader yaml, LoaderOptions loaderOptions) {
+        Composer composer = new Composer(new ParserImpl(yaml, loaderOptions), new Resolver(), loaderOptions);
         return composer.getSingleNode();
     }
 
@@ -48,27 +65,102 @@ public class YamlHelper {
         return load(new StringReader(yaml));
     }
 
+    /**
+     * Loads a document, only composing the children of a collection node when they are first accessed.
+     * The whole document is still parsed and its events kept until composed, so this only saves the work for
+     * untouched subtrees, e.g. when just a version field is read. See {@link LazyComposer} for the trade-offs.
+     */
+    public static Node loadLazy(Reader yaml) {
+        return loadLazy(yaml, new LoaderOptions());
+    }
+
+    public static Node loadLazy(Reader yaml, LoaderOptions loaderOptions) {
+        return loadLazy(new StreamReader(yaml), loaderOptions);
+    }
+
+    public static Node loadLazy(StreamReader yaml, LoaderOptions loaderOptions) {
+        LazyComposer composer = new LazyComposer(new ParserImpl(yaml, loaderOptions), new Resolver(), loaderOptions);
+        return composer.getSingleNode();
+    }
+
+    public static Node loadLazy(String yaml) {
+        return loadLazy(new StringReader(yaml));
+    }
+
+    /**
+     * LoaderOptions without SnakeYaml's default limit of 3M code points, nesting depth and alias limits keep their
+     * defaults. Only use these for trusted or already size-checked input, otherwise the loader reads until the heap
+     * runs out; the plain {@code new LoaderOptions()} used by the other load methods stays the safe default.
+     */
+    public static LoaderOptions largeDocumentOptions() {
+        LoaderOptions loaderOptions = new LoaderOptions();
+        loaderOptions.setCodePointLimit(Integer.MAX_VALUE);
+        return loaderOptions;
+    }
+
     public static Node sortMappingKeys(Node rootNode, Comparator<String> keyComparator) {
+        return sortMappingKeys(rootNode, keyComparator, new IdentityHashMap<>());
+    }
+
+    //nodes shared through aliases are sorted once, so they stay shared in the output
+    private static Node sortMappingKeys(Node rootNode, Comparator<String> keyComparator, Map<Node, Node> sorted) {
+        if (rootNode instanceof AnchorNode anchorNode) {
+            return sortMappingKeys(anchorNode.getRealNode(), keyComparator, sorted);
+        }
+        if (!(rootNode instanceof CollectionNode<?>)) {
+            return rootNode;
+        }
+        Node existing = sorted.get(rootNode);
+        if (existing != null) {
+            return existing;
+        }
+        Node result;
         if (rootNode instanceof SequenceNode sequenceNode) {
-            return new SequenceNode(
+            result = new SequenceNode(
                     sequenceNode.getTag(),
-                    sequenceNode.getValue().stream().map(node -> sortMappingKeys(node, keyComparator)).toList(),
+                    sequenceNode.getValue().stream().map(node -> sortMappingKeys(node, keyComparator, sorted)).toList(),
                     sequenceNode.getFlowStyle()
             );
-        }
-        if (rootNode instanceof MappingNode mappingNode) {
+        } else {
+            MappingNode mappingNode = (MappingNode) rootNode;
             List<NodeTuple> sortedList = mappingNode.getValue().stream()
                     //recurse to map values
-                    .map(t->new NodeTuple(t.getKeyNode(), sortMappingKeys(t.getValueNode(), keyComparator)))
+                    .map(t->new NodeTuple(t.getKeyNode(), sortMappingKeys(t.getValueNode(), keyComparator, sorted)))
                     //sort the keys
                     .sorted(Comparator.comparing(t->((ScalarNode)t.getKeyNode()).getValue(), keyComparator))
                     //add to new list
                     .toList();
-            return new MappingNode(mappingNode.getTag(), sortedList, mappingNode.getFlowStyle());
+            result = new MappingNode(mappingNode.getTag(), sortedList, mappingNode.getFlowStyle());
         }
-        if (rootNode instanceof AnchorNode anchorNode) {
-            return sortMappingKeys(anchorNode.getRealNode(), keyComparator);
+        sorted.put(rootNode, result);
+        return result;
+    }
+
+    /**
+     * Makes structurally identical subtrees of at least {@code minExpandedSize} nodes the same instance, so they are
+     * dumped once with an anchor and referenced by aliases afterwards.
+     */
+    public static Node shareRepeatedSubtrees(Node rootNode, long minExpandedSize) {
+        return new SubtreeSharer(minExpandedSize).share(rootNode);
+    }
+
+    /**
+     * Counts the nodes in the document as if every alias were expanded, without actually expanding them.
+     * Recursive documents have a size of {@link Long#MAX_VALUE}. Composes the whole document if it was loaded lazily.
+     */
+    public static long expandedSize(Node rootNode) {
+        return ExpandedSize.of(rootNode);
+    }
+
+    /**
+     * Guards against alias bombs before handing a document to a codec, which would decode every alias separately.
+     *
+     * @throws YAMLException if the document would expand to more than {@code maxExpandedSize} nodes
+     */
+    public static Node checkExpandedSize(Node rootNode, long maxExpandedSize) {
+        if (expandedSize(rootNode) > maxExpandedSize) {
+            throw new YAMLException("Expanded size of document exceeds the specified max=" + maxExpandedSize);
         }
         return rootNode;
     }
-}
\ No newline at end of file
+}
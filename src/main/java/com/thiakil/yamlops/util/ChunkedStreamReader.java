@@ -0,0 +1,37 @@
+package com.thiakil.yamlops.util;
+
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.reader.StreamReader;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+
+/**
+ * StreamReader for large documents.
+ * <p>
+ * SnakeYaml pulls ~1k characters per read, so the input is read through a buffer of {@code chunkSize} characters
+ * instead. Normally each {@link Mark} references the reader's window array that was current when it was made, and the
+ * reader replaces that array on every refill, so the marks on a large document's nodes together keep most of the
+ * source text alive; without mark tracking every token and node shares one placeholder instead.
+ */
+public class ChunkedStreamReader extends StreamReader {
+    //Mark is final, so say so in the name; line/column print as 0, which a real position never does
+    private static final Mark UNTRACKED = new Mark("<unknown position, marks not tracked>", 0, -1, -1, new int[0], 0);
+
+    private final boolean trackMarks;
+
+    /**
+     * @param trackMarks false to skip source positions. Errors are then reported "in &lt;unknown position, marks not
+     *                   tracked&gt;, line 0, column 0" with an empty snippet, and every node has that placeholder as
+     *                   its start/end mark.
+     */
+    public ChunkedStreamReader(Reader reader, int chunkSize, boolean trackMarks) {
+        super(new BufferedReader(reader, chunkSize));
+        this.trackMarks = trackMarks;
+    }
+
+    @Override
+    public Mark getMark() {
+        return trackMarks ? super.getMark() : UNTRACKED;
+    }
+}
@@ -0,0 +1,51 @@
+package com.thiakil.yamlops.util;
+
+import org.yaml.snakeyaml.nodes.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Node counts of documents as if every alias were expanded, saturating at {@link Long#MAX_VALUE}.
+ */
+public class ExpandedSize {
+    public static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Counts the nodes without expanding aliases, each shared node is only walked once.
+     * Recursive documents have a size of {@link Long#MAX_VALUE}.
+     */
+    public static long of(Node rootNode) {
+        return of(rootNode, new IdentityHashMap<>());
+    }
+
+    private static long of(Node node, Map<Node, Long> sizes) {
+        if (node instanceof AnchorNode anchorNode) {
+            return of(anchorNode.getRealNode(), sizes);
+        }
+        if (!(node instanceof CollectionNode<?>)) {
+            return 1;
+        }
+        Long known = sizes.get(node);
+        if (known != null) {
+            return known;
+        }
+        //seeing this node again before it is finished means the document is recursive
+        sizes.put(node, Long.MAX_VALUE);
+        long size = 1;
+        if (node instanceof SequenceNode sequenceNode) {
+            for (Node child : sequenceNode.getValue()) {
+                size = add(size, of(child, sizes));
+            }
+        } else {
+            for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+                size = add(size, add(of(tuple.getKeyNode(), sizes), of(tuple.getValueNode(), sizes)));
+            }
+        }
+        sizes.put(node, size);
+        return size;
+    }
+}
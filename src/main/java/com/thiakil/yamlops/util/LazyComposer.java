@@ -0,0 +1,329 @@
+package com.thiakil.yamlops.util;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.composer.ComposerException;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.*;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.util.*;
+
+/**
+ * Composer which only scans the event stream up front and builds {@link Node}s on demand.
+ * <p>
+ * Collections are returned as {@link MappingNode}/{@link SequenceNode} subclasses whose children are composed the
+ * first time {@code getValue()} is called, so a codec that only reads a few fields never pays for resolving the rest
+ * of the document. Aliases resolve to the same node instance as their anchor, as with the regular Composer.
+ * <p>
+ * The whole document is still parsed up front, and every event (with its start and end {@link Mark}s) is kept until
+ * the collection containing it is composed; the events of a collection are released once it has been composed, and
+ * the scan data once every collection has. What is saved is tag resolution and node allocation for untouched
+ * subtrees, so reading a few fields of a large document uses somewhat less heap and time than a full load. Most of the
+ * retained memory is Marks, so pair this with an untracked {@link ChunkedStreamReader} for real savings.
+ * <p>
+ * Comments are not supported, {@link LoaderOptions#isProcessComments()} must be false.
+ * <p>
+ * Unlike nodes from the regular Composer, lazy nodes fill in their contents on the first {@code getValue()}, so they
+ * must not be read from several threads without external synchronisation.
+ */
+public class LazyComposer {
+    private final Parser parser;
+    private final Resolver resolver;
+    private final LoaderOptions loadingConfig;
+
+    private Event[] events = new Event[256];
+    //index of the matching CollectionEndEvent for each CollectionStartEvent, alias target for each AliasEvent
+    private int[] links = new int[256];
+    private int eventCount;
+    private int uncomposedCollections;
+    private final Map<Integer, Node> anchoredNodes = new HashMap<>();
+
+    public LazyComposer(Parser parser, Resolver resolver, LoaderOptions loadingConfig) {
+        this.parser = parser;
+        this.resolver = resolver;
+        this.loadingConfig = loadingConfig;
+        if (loadingConfig.isProcessComments()) {
+            throw new IllegalArgumentException("Lazy loading does not support processComments, comments would be lost");
+        }
+    }
+
+    public Node getSingleNode() {
+        // Drop the STREAM-START event.
+        parser.getEvent();
+        Node document = null;
+        if (!parser.checkEvent(Event.ID.StreamEnd)) {
+            // Drop the DOCUMENT-START event.
+            parser.getEvent();
+            scan();
+            // Drop the DOCUMENT-END event.
+            parser.getEvent();
+            document = composeNode(0);
+            events[0] = null;
+            releaseIfComposed();
+        }
+        if (!parser.checkEvent(Event.ID.StreamEnd)) {
+            Event event = parser.getEvent();
+            Mark contextMark = document != null ? document.getStartMark() : null;
+            throw new LazyComposerException("expected a single document in the stream", contextMark, "but found another document", event.getStartMark());
+        }
+        // Drop the STREAM-END event.
+        parser.getEvent();
+        return document;
+    }
+
+    /**
+     * Whether the children of a collection from a LazyComposer have been composed yet, always true for other nodes.
+     */
+    public static boolean isComposed(Node node) {
+        if (node instanceof LazySequenceNode sequenceNode) {
+            return sequenceNode.startIndex == -1;
+        }
+        if (node instanceof LazyMappingNode mappingNode) {
+            return mappingNode.startIndex == -1;
+        }
+        return true;
+    }
+
+    private void scan() {
+        Map<String, Integer> anchors = new HashMap<>();
+        int[] openCollections = new int[16];
+        int depth = 0;
+        int nonScalarAliasesCount = 0;
+        do {
+            Event event = parser.getEvent();
+            int index = addEvent(event);
+            if (event instanceof ScalarEvent scalarEvent) {
+                checkGlobalTag(scalarEvent.getTag(), event);
+            } else if (event instanceof CollectionStartEvent collectionStartEvent) {
+                checkGlobalTag(collectionStartEvent.getTag(), event);
+            }
+            if (event instanceof AliasEvent aliasEvent) {
+                Integer target = anchors.get(aliasEvent.getAnchor());
+                if (target == null) {
+                    throw new LazyComposerException(null, null, "found undefined alias " + aliasEvent.getAnchor(), event.getStartMark());
+                }
+                if (events[target] instanceof CollectionStartEvent) {
+                    nonScalarAliasesCount++;
+                    if (nonScalarAliasesCount > loadingConfig.getMaxAliasesForCollections()) {
+                        throw new YAMLException("Number of aliases for non-scalar nodes exceeds the specified max=" + loadingConfig.getMaxAliasesForCollections());
+                    }
+                }
+                links[index] = target;
+            } else if (event instanceof NodeEvent nodeEvent && nodeEvent.getAnchor() != null) {
+                anchors.put(nodeEvent.getAnchor(), index);
+            }
+            if (event instanceof CollectionStartEvent) {
+                if (depth == openCollections.length) {
+                    openCollections = Arrays.copyOf(openCollections, depth * 2);
+                }
+                openCollections[depth++] = index;
+                uncomposedCollections++;
+                if (depth > loadingConfig.getNestingDepthLimit()) {
+                    throw new YAMLException("Nesting Depth exceeded max " + loadingConfig.getNestingDepthLimit());
+                }
+            } else if (event instanceof CollectionEndEvent) {
+                links[openCollections[--depth]] = index;
+            }
+        } while (depth > 0);
+    }
+
+    private void checkGlobalTag(String tag, Event event) {
+        if (!isImplicitTag(tag)) {
+            Tag nodeTag = new Tag(tag);
+            if (nodeTag.isCustomGlobal() && !loadingConfig.getTagInspector().isGlobalTagAllowed(nodeTag)) {
+                throw new LazyComposerException(null, null, "Global tag is not allowed: " + tag, event.getStartMark());
+            }
+        }
+    }
+
+    private int addEvent(Event event) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, eventCount * 2);
+            links = Arrays.copyOf(links, eventCount * 2);
+        }
+        events[eventCount] = event;
+        return eventCount++;
+    }
+
+    private int nextSibling(int index) {
+        return (events[index] instanceof CollectionStartEvent ? links[index] : index) + 1;
+    }
+
+    private Node composeNode(int index) {
+        Event event = events[index];
+        if (event instanceof AliasEvent) {
+            return composeNode(links[index]);
+        }
+        if (event == null) {
+            // events are only released once composed, anything still reachable through an alias was anchored
+            return anchoredNodes.get(index);
+        }
+        String anchor = ((NodeEvent) event).getAnchor();
+        if (anchor != null) {
+            Node existing = anchoredNodes.get(index);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        Node node;
+        if (event instanceof ScalarEvent scalarEvent) {
+            node = composeScalarNode(scalarEvent);
+        } else if (event instanceof SequenceStartEvent sequenceStartEvent) {
+            Tag nodeTag = resolveTag(sequenceStartEvent.getTag(), NodeId.sequence, sequenceStartEvent.getImplicit());
+            node = new LazySequenceNode(nodeTag, isImplicitTag(sequenceStartEvent.getTag()), index, sequenceStartEvent.getStartMark(), events[links[index]].getEndMark(), sequenceStartEvent.getFlowStyle());
+        } else {
+            MappingStartEvent mappingStartEvent = (MappingStartEvent) event;
+            Tag nodeTag = resolveTag(mappingStartEvent.getTag(), NodeId.mapping, mappingStartEvent.getImplicit());
+            node = new LazyMappingNode(nodeTag, isImplicitTag(mappingStartEvent.getTag()), index, mappingStartEvent.getStartMark(), events[links[index]].getEndMark(), mappingStartEvent.getFlowStyle());
+        }
+        if (anchor != null) {
+            node.setAnchor(anchor);
+            anchoredNodes.put(index, node);
+        }
+        return node;
+    }
+
+    private Node composeScalarNode(ScalarEvent ev) {
+        Tag nodeTag;
+        if (isImplicitTag(ev.getTag())) {
+            nodeTag = resolver.resolve(NodeId.scalar, ev.getValue(), ev.getImplicit().canOmitTagInPlainScalar());
+        } else {
+            nodeTag = new Tag(ev.getTag());
+        }
+        return new ScalarNode(nodeTag, isImplicitTag(ev.getTag()), ev.getValue(), ev.getStartMark(), ev.getEndMark(), ev.getScalarStyle());
+    }
+
+    private static boolean isImplicitTag(String tag) {
+        return tag == null || tag.equals("!");
+    }
+
+    private Tag resolveTag(String tag, NodeId nodeId, boolean implicit) {
+        if (isImplicitTag(tag)) {
+            return resolver.resolve(nodeId, null, implicit);
+        }
+        return new Tag(tag);
+    }
+
+    // children's start events are released by the parent, their own ranges by their own composition
+    private void releaseChild(int index) {
+        events[index] = null;
+    }
+
+    private void finishComposing(int start) {
+        events[links[start]] = null;
+        uncomposedCollections--;
+        releaseIfComposed();
+    }
+
+    private void releaseIfComposed() {
+        if (uncomposedCollections == 0) {
+            events = null;
+            links = null;
+            anchoredNodes.clear();
+        }
+    }
+
+    private class LazySequenceNode extends SequenceNode {
+        private int startIndex;
+
+        LazySequenceNode(Tag tag, boolean resolved, int startIndex, Mark startMark, Mark endMark, DumperOptions.FlowStyle flowStyle) {
+            super(tag, resolved, new ArrayList<>(), startMark, endMark, flowStyle);
+            this.startIndex = startIndex;
+        }
+
+        @Override
+        public List<Node> getValue() {
+            List<Node> value = super.getValue();
+            if (startIndex != -1) {
+                int start = startIndex;
+                //mark as composed first, a recursive alias will see the (partial) list like the normal Composer
+                startIndex = -1;
+                for (int i = start + 1, end = links[start]; i < end; ) {
+                    int next = nextSibling(i);
+                    value.add(composeNode(i));
+                    releaseChild(i);
+                    i = next;
+                }
+                finishComposing(start);
+            }
+            return value;
+        }
+
+        @Override
+        public void setListType(Class<? extends Object> listType) {
+            getValue();
+            super.setListType(listType);
+        }
+    }
+
+    private class LazyMappingNode extends MappingNode {
+        private int startIndex;
+
+        LazyMappingNode(Tag tag, boolean resolved, int startIndex, Mark startMark, Mark endMark, DumperOptions.FlowStyle flowStyle) {
+            super(tag, resolved, new ArrayList<>(), startMark, endMark, flowStyle);
+            this.startIndex = startIndex;
+        }
+
+        @Override
+        public List<NodeTuple> getValue() {
+            List<NodeTuple> value = super.getValue();
+            if (startIndex != -1) {
+                int start = startIndex;
+                startIndex = -1;
+                for (int i = start + 1, end = links[start]; i < end; ) {
+                    int next = nextSibling(i);
+                    Node keyNode = composeNode(i);
+                    if (keyNode.getTag().equals(Tag.MERGE)) {
+                        setMerged(true);
+                    }
+                    releaseChild(i);
+                    i = next;
+                    next = nextSibling(i);
+                    Node valueNode = composeNode(i);
+                    releaseChild(i);
+                    i = next;
+                    value.add(new NodeTuple(keyNode, valueNode));
+                }
+                finishComposing(start);
+            }
+            return value;
+        }
+
+        @Override
+        public void setValue(List<NodeTuple> mergedValue) {
+            //compose first so anchors in the replaced children stay resolvable and the events get released
+            getValue();
+            super.setValue(mergedValue);
+        }
+
+        // the following read the children directly, so compose them first
+
+        @Override
+        public boolean isMerged() {
+            getValue();
+            return super.isMerged();
+        }
+
+        @Override
+        public void setOnlyKeyType(Class<? extends Object> keyType) {
+            getValue();
+            super.setOnlyKeyType(keyType);
+        }
+
+        @Override
+        public void setTypes(Class<? extends Object> keyType, Class<? extends Object> valueType) {
+            getValue();
+            super.setTypes(keyType, valueType);
+        }
+    }
+
+    private static class LazyComposerException extends ComposerException {
+        LazyComposerException(String context, Mark contextMark, String problem, Mark problemMark) {
+            super(context, contextMark, problem, problemMark);
+        }
+    }
+}
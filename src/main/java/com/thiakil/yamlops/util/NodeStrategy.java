@@ -33,6 +33,10 @@ public class NodeStrategy implements Hash.Strategy<Node> {
         if (a == b) {
             return true;
         }
+        //avoid hashing whole (possibly heavily aliased) subtrees when the kinds can't match
+        if (a.getNodeId() != b.getNodeId()) {
+            return false;
+        }
         return hashCode(a) == hashCode(b);
     }
 }
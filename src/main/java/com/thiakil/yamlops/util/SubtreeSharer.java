@@ -0,0 +1,99 @@
+package com.thiakil.yamlops.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.nodes.*;
+
+import java.util.*;
+
+/**
+ * Replaces structurally identical subtrees with a single shared instance, so the Serializer emits an anchor for the
+ * first occurrence and aliases for the rest.
+ * <p>
+ * Subtrees are compared by tag, style and content. Only subtrees with an expanded size (in nodes) of at least
+ * {@code minExpandedSize} are shared, small ones are left as-is since an alias would not save anything.
+ */
+public class SubtreeSharer {
+    private final long minExpandedSize;
+    private final Map<Node, Visited> visited = new IdentityHashMap<>();
+    private final Map<Object, Visited> byStructure = new HashMap<>();
+    private int recursiveIds = -1;
+
+    public SubtreeSharer(long minExpandedSize) {
+        this.minExpandedSize = minExpandedSize;
+    }
+
+    public Node share(Node rootNode) {
+        return visit(rootNode).node();
+    }
+
+    private Visited visit(Node node) {
+        if (node instanceof AnchorNode anchorNode) {
+            return visit(anchorNode.getRealNode());
+        }
+        Visited known = visited.get(node);
+        if (known != null) {
+            return known;
+        }
+        Visited result;
+        if (node instanceof SequenceNode sequenceNode) {
+            //recursive structures can't be compared structurally, give them a unique id
+            visited.put(node, new Visited(node, recursiveIds--, Long.MAX_VALUE));
+            IntArrayList childIds = new IntArrayList();
+            List<Node> children = new ArrayList<>();
+            boolean changed = false;
+            long size = 1;
+            for (Node child : sequenceNode.getValue()) {
+                Visited visitedChild = visit(child);
+                childIds.add(visitedChild.id());
+                children.add(visitedChild.node());
+                changed |= visitedChild.node() != child;
+                size = ExpandedSize.add(size, visitedChild.size());
+            }
+            Node rebuilt = changed ? new SequenceNode(sequenceNode.getTag(), children, sequenceNode.getFlowStyle()) : sequenceNode;
+            result = intern(new CollectionKey(NodeId.sequence, sequenceNode.getTag(), sequenceNode.getFlowStyle(), childIds), rebuilt, size);
+        } else if (node instanceof MappingNode mappingNode) {
+            visited.put(node, new Visited(node, recursiveIds--, Long.MAX_VALUE));
+            IntArrayList childIds = new IntArrayList();
+            List<NodeTuple> children = new ArrayList<>();
+            boolean changed = false;
+            long size = 1;
+            for (NodeTuple tuple : mappingNode.getValue()) {
+                Visited key = visit(tuple.getKeyNode());
+                Visited value = visit(tuple.getValueNode());
+                childIds.add(key.id());
+                childIds.add(value.id());
+                children.add(new NodeTuple(key.node(), value.node()));
+                changed |= key.node() != tuple.getKeyNode() || value.node() != tuple.getValueNode();
+                size = ExpandedSize.add(size, ExpandedSize.add(key.size(), value.size()));
+            }
+            Node rebuilt = changed ? new MappingNode(mappingNode.getTag(), children, mappingNode.getFlowStyle()) : mappingNode;
+            result = intern(new CollectionKey(NodeId.mapping, mappingNode.getTag(), mappingNode.getFlowStyle(), childIds), rebuilt, size);
+        } else if (node instanceof ScalarNode scalarNode) {
+            result = intern(new ScalarKey(scalarNode.getTag(), scalarNode.getValue(), scalarNode.getScalarStyle()), scalarNode, 1);
+        } else {
+            result = new Visited(node, recursiveIds--, 1);
+        }
+        visited.put(node, result);
+        return result;
+    }
+
+    private Visited intern(Object key, Node node, long size) {
+        Visited existing = byStructure.get(key);
+        if (existing == null) {
+            Visited result = new Visited(node, byStructure.size(), size);
+            byStructure.put(key, result);
+            return result;
+        }
+        if (size >= minExpandedSize) {
+            return existing;
+        }
+        return new Visited(node, existing.id(), size);
+    }
+
+    private record Visited(Node node, int id, long size) {}
+
+    private record ScalarKey(Tag tag, String value, DumperOptions.ScalarStyle style) {}
+
+    private record CollectionKey(NodeId nodeId, Tag tag, DumperOptions.FlowStyle flowStyle, IntArrayList childIds) {}
+}
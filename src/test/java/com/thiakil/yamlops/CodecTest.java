@@ -1,15 +1,25 @@
 package com.thiakil.yamlops;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.serialization.*;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import com.thiakil.yamlops.util.ChunkedStreamReader;
+import com.thiakil.yamlops.util.LazyComposer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.composer.ComposerException;
+import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.nodes.MappingNode;
 import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
 import org.yaml.snakeyaml.nodes.ScalarNode;
 import org.yaml.snakeyaml.nodes.SequenceNode;
 
+import java.io.StringReader;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -283,6 +293,142 @@ public class CodecTest {
         testDumpParse(ops, YamlHelper::dumpString, YamlHelper::load);
     }
 
+    @Test
+    public void testDumpParseLazySnakeYaml() {
+        SnakeYamlOps ops = new SnakeYamlOps();
+        testDumpParse(ops, YamlHelper::dumpString, YamlHelper::loadLazy);
+    }
+
+    @Test
+    public void testLazyComposition() {
+        MappingNode root = (MappingNode) YamlHelper.loadLazy("a: &x {k: 1}\nb: *x\nc: &x {k: 2}\nd: *x\ne: [*x]\nf: {untouched: [1, 2]}\n");
+        Assertions.assertFalse(LazyComposer.isComposed(root), "root composed before access");
+        List<NodeTuple> values = root.getValue();
+        Assertions.assertTrue(LazyComposer.isComposed(root));
+        MappingNode untouched = (MappingNode) values.get(5).getValueNode();
+        Assertions.assertFalse(LazyComposer.isComposed(untouched), "child composed with its parent");
+
+        Assertions.assertSame(values.get(0).getValueNode(), values.get(1).getValueNode(), "alias is its anchor");
+        Assertions.assertSame(values.get(2).getValueNode(), values.get(3).getValueNode(), "alias is the re-defined anchor");
+        Assertions.assertNotSame(values.get(0).getValueNode(), values.get(2).getValueNode());
+        Assertions.assertSame(values.get(2).getValueNode(), ((SequenceNode) values.get(4).getValueNode()).getValue().get(0));
+
+        Assertions.assertEquals(Map.of("untouched", List.of("1", "2")), toGeneric(untouched));
+        Assertions.assertTrue(LazyComposer.isComposed(untouched));
+
+        Assertions.assertThrows(ComposerException.class, () -> YamlHelper.loadLazy("a: 1\n---\nb: 2\n"));
+        Assertions.assertThrows(ComposerException.class, () -> YamlHelper.loadLazy("a: *undefined\n"));
+    }
+
+    @Test
+    public void testLazyMatchesEagerChecks() {
+        String unsafe = "a: !!java.net.URL [\"http://x\"]\n";
+        Assertions.assertThrows(ComposerException.class, () -> YamlHelper.load(unsafe));
+        Assertions.assertThrows(ComposerException.class, () -> YamlHelper.loadLazy(unsafe));
+
+        LoaderOptions withComments = new LoaderOptions();
+        withComments.setProcessComments(true);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> YamlHelper.loadLazy(new StringReader("# header\na: 1\n"), withComments));
+
+        LoaderOptions shallow = new LoaderOptions();
+        shallow.setNestingDepthLimit(3);
+        String deep = "a: {b: {c: [1]}}\n";
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new StringReader(deep), shallow));
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.loadLazy(new StringReader(deep), shallow));
+
+        LoaderOptions fewAliases = new LoaderOptions();
+        fewAliases.setMaxAliasesForCollections(2);
+        String aliased = "a: &x [1]\nb: *x\nc: *x\nd: *x\n";
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new StringReader(aliased), fewAliases));
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.loadLazy(new StringReader(aliased), fewAliases));
+
+        String merged = "base: &b {x: 1, y: !!str 2}\nderived:\n  <<: *b\n  z: [3, *b]\n";
+        MappingNode lazyRoot = (MappingNode) YamlHelper.loadLazy(merged);
+        MappingNode lazyDerived = (MappingNode) lazyRoot.getValue().get(1).getValueNode();
+        Assertions.assertTrue(lazyDerived.isMerged(), "merged before the value is read");
+        //fresh options per dump, the anchor generator numbers anchors across dumps
+        Assertions.assertEquals(YamlHelper.dumpString(YamlHelper.load(merged), new DumperOptions()), YamlHelper.dumpString(YamlHelper.loadLazy(merged), new DumperOptions()));
+    }
+
+    @Test
+    public void testDumpParseLargeDocumentSnakeYaml() {
+        SnakeYamlOps ops = new SnakeYamlOps();
+        testDumpParse(ops, YamlHelper::dumpString, yaml -> YamlHelper.load(new ChunkedStreamReader(new StringReader(yaml), 1 << 16, false), YamlHelper.largeDocumentOptions()));
+        testDumpParse(ops, YamlHelper::dumpString, yaml -> YamlHelper.loadLazy(new ChunkedStreamReader(new StringReader(yaml), 1 << 16, false), YamlHelper.largeDocumentOptions()));
+
+        LoaderOptions limited = new LoaderOptions();
+        limited.setCodePointLimit(16);
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new StringReader("key: a value longer than the limit"), limited));
+
+        String invalid = "a: 1\nb: [2\n";
+        YAMLException untracked = Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new ChunkedStreamReader(new StringReader(invalid), 64, false), new LoaderOptions()));
+        Assertions.assertTrue(untracked.getMessage().contains("<unknown position, marks not tracked>"), untracked.getMessage());
+        YAMLException tracked = Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new ChunkedStreamReader(new StringReader(invalid), 64, true), new LoaderOptions()));
+        Assertions.assertTrue(tracked.getMessage().contains("line 2, column 4"), tracked.getMessage());
+        Node trackedNode = YamlHelper.load(new ChunkedStreamReader(new StringReader("a: 1\nb: 2\n"), 64, true), new LoaderOptions());
+        Assertions.assertEquals(1, ((MappingNode) trackedNode).getValue().get(1).getKeyNode().getStartMark().getLine());
+    }
+
+    @Test
+    public void testLoadAboveDefaultCodePointLimit() {
+        StringBuilder builder = new StringBuilder("version: 1\nitems:\n");
+        while (builder.length() <= new LoaderOptions().getCodePointLimit()) {
+            builder.append("- some list entry padding out the document\n");
+        }
+        String yaml = builder.toString();
+
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.load(new StringReader(yaml), new LoaderOptions()));
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.loadLazy(new StringReader(yaml), new LoaderOptions()));
+
+        Node eager = YamlHelper.load(new StringReader(yaml), YamlHelper.largeDocumentOptions());
+        Node lazy = YamlHelper.loadLazy(new ChunkedStreamReader(new StringReader(yaml), 1 << 16, false), YamlHelper.largeDocumentOptions());
+        Assertions.assertEquals(toGeneric(eager), toGeneric(lazy));
+    }
+
+    @Test
+    public void testConvertKeepsAliasesShared() {
+        SnakeYamlOps ops = new SnakeYamlOps();
+        MappingNode root = (MappingNode) YamlHelper.load("a: &s {x: [1]}\nb: *s\n");
+        Node shared = root.getValue().get(0).getValueNode();
+
+        JsonObject first = ops.convertTo(JsonOps.INSTANCE, root).getAsJsonObject();
+        Assertions.assertSame(first.get("a"), first.get("b"), "aliased subtree converted once");
+        JsonObject second = ops.convertTo(JsonOps.INSTANCE, root).getAsJsonObject();
+        Assertions.assertNotSame(first.get("a"), second.get("a"), "each convertTo starts with a fresh cache");
+
+        //converts the shared subtree with other ops while the outer pass has it cached, i.e. at key "b"
+        List<JsonElement> nested = new ArrayList<>();
+        JsonOps reentrant = new JsonOps(false) {
+            @Override
+            public JsonElement createString(String value) {
+                if (value.equals("b")) {
+                    nested.add(ops.convertTo(JsonOps.INSTANCE, shared));
+                }
+                return super.createString(value);
+            }
+        };
+        JsonObject outer = ops.convertTo(reentrant, root).getAsJsonObject();
+        Assertions.assertEquals(1, nested.size());
+        Assertions.assertSame(outer.get("a"), outer.get("b"), "nested pass didn't replace the outer pass's entry");
+        Assertions.assertEquals(outer.get("a"), nested.get(0));
+        Assertions.assertNotSame(outer.get("a"), nested.get(0), "nested pass with other ops didn't reuse the outer cache");
+    }
+
+    @Test
+    public void testAliasesStayShared() {
+        Node loaded = YamlHelper.load("a: &shared {x: [1, 2, 3]}\nb: *shared\nc: {x: [1, 2, 3]}\n");
+        MappingNode sorted = (MappingNode) YamlHelper.sortMappingKeys(loaded, Comparator.naturalOrder());
+        Assertions.assertSame(sorted.getValue().get(0).getValueNode(), sorted.getValue().get(1).getValueNode(), "aliased subtree sorted once");
+        Assertions.assertNotSame(sorted.getValue().get(0).getValueNode(), sorted.getValue().get(2).getValueNode(), "equal subtree not shared by sorting");
+
+        MappingNode shared = (MappingNode) YamlHelper.shareRepeatedSubtrees(sorted, 4);
+        Assertions.assertSame(shared.getValue().get(0).getValueNode(), shared.getValue().get(2).getValueNode(), "equal subtree shared");
+        Assertions.assertEquals(toGeneric(loaded), toGeneric(YamlHelper.load(YamlHelper.dumpString(shared))));
+
+        Assertions.assertEquals(22, YamlHelper.expandedSize(loaded));
+        Assertions.assertThrows(YAMLException.class, () -> YamlHelper.checkExpandedSize(loaded, 21));
+    }
+
     //convert nodes to generic objects, as they natively compare by instance (not contents)
     private static Object toGeneric(Node node) {
         if (node instanceof ScalarNode scalarNode) {